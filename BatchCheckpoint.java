@@ -0,0 +1,135 @@
+package taxCalculator;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+/** A checkpoint records how far a batch run has got, so that a run which is killed can pick up
+ * where it stopped. It holds how many input lines have been committed, how long the output file
+ * was when they were, and the distributional report for those lines if one is being built.
+ * <p>
+ * A checkpoint is only written after the output it describes has been flushed to disk, and it
+ * replaces the previous checkpoint in a single rename. On resume the output is cut back to the
+ * recorded length, so rows written after the last checkpoint are computed again rather than
+ * duplicated. Shards that had finished but could not be written yet, because a shard before
+ * them was still running, are saved in the checkpoint with their results. The report covers
+ * both the written lines and those shards.
+ * <p>
+ * A checkpoint also records a hash of the whole input and the shard size, and a run refuses to
+ * resume from a checkpoint made for anything else. A run that finishes deletes its checkpoint,
+ * so running the same command again starts over.
+ */
+public class BatchCheckpoint {
+	private static final int MAGIC = 0x54584350;
+	private static final int VERSION = 4;
+
+	/** The SHA-256 hash of the input lines, used to check that a resumed run is reading the
+	 * same input. **/
+	final byte[] inputHash;
+	final long inputLines;
+	final int shardSize;
+	final long committedLines;
+	final long outputLength;
+	/** Results of shards that finished ahead of the written output, by their first input line. **/
+	final Map<Long, String[]> finishedShards;
+	final DistributionalReport report;
+
+	public BatchCheckpoint(byte[] inputHash, long inputLines, int shardSize, long committedLines,
+			long outputLength, Map<Long, String[]> finishedShards, DistributionalReport report) {
+		this.inputHash = inputHash;
+		this.inputLines = inputLines;
+		this.shardSize = shardSize;
+		this.committedLines = committedLines;
+		this.outputLength = outputLength;
+		this.finishedShards = finishedShards;
+		this.report = report;
+	}
+
+	/** Reads the checkpoint at the given path.
+	 * @return the checkpoint, or null if there is none yet.
+	 * @throws IOException if the file exists but is not a checkpoint.
+	 */
+	public static BatchCheckpoint read(File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a batch checkpoint");
+			}
+			byte[] inputHash = new byte[in.readInt()];
+			in.readFully(inputHash);
+			long inputLines = in.readLong();
+			int shardSize = in.readInt();
+			long committedLines = in.readLong();
+			long outputLength = in.readLong();
+			Map<Long, String[]> finishedShards = new TreeMap<>();
+			int shards = in.readInt();
+			for (int i = 0; i < shards; i++) {
+				long start = in.readLong();
+				String[] results = new String[in.readInt()];
+				for (int j = 0; j < results.length; j++) {
+					results[j] = in.readUTF();
+				}
+				finishedShards.put(start, results);
+			}
+			DistributionalReport report = in.readBoolean() ? DistributionalReport.read(in) : null;
+			return new BatchCheckpoint(inputHash, inputLines, shardSize, committedLines, outputLength, finishedShards, report);
+		}
+	}
+
+	/** @return the hash that identifies an input, taken over every line in order. **/
+	public static byte[] hash(List<String> lines) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] newline = {'\n'};
+			for (String line : lines) {
+				digest.update(line.getBytes("UTF-8"));
+				digest.update(newline);
+			}
+			return digest.digest();
+		} catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+			// Every Java platform is required to support both.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** @return whether this checkpoint was made for the given input and shard size. **/
+	public boolean matches(byte[] inputHash, long inputLines, int shardSize) {
+		return Arrays.equals(this.inputHash, inputHash) && this.inputLines == inputLines && this.shardSize == shardSize;
+	}
+
+	/** Writes the checkpoint next to its final path, forces it to disk, and moves it into place,
+	 * so a crash part way through leaves the previous checkpoint untouched.
+	 */
+	public void write(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		try (FileOutputStream stream = new FileOutputStream(temp)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(inputHash.length);
+			out.write(inputHash);
+			out.writeLong(inputLines);
+			out.writeInt(shardSize);
+			out.writeLong(committedLines);
+			out.writeLong(outputLength);
+			out.writeInt(finishedShards.size());
+			for (Map.Entry<Long, String[]> shard : finishedShards.entrySet()) {
+				out.writeLong(shard.getKey());
+				out.writeInt(shard.getValue().length);
+				for (String result : shard.getValue()) {
+					out.writeUTF(result);
+				}
+			}
+			out.writeBoolean(report != null);
+			if (report != null) {
+				report.write(out);
+			}
+			out.flush();
+			stream.getFD().sync();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
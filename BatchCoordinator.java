@@ -0,0 +1,514 @@
+package taxCalculator;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/** The batch coordinator runs a file of filers across several BatchWorker processes. It splits
+ * the input into shards of consecutive filers, hands the shards out to whichever worker is free,
+ * and writes the results in the same order as the input, one TaxResult line per filer line.
+ * <p>
+ * If a worker dies or stops answering, the shard it was working on is put back in the queue
+ * for the other workers, and the coordinator keeps trying to reconnect to the lost worker.
+ * A shard that fails too many times, or losing every worker, stops the whole run.
+ * <p>
+ * Results are written as soon as every shard before them has finished, so only the shards
+ * that are ahead of a slow one are held in memory. With -report, the coordinator also builds a
+ * DistributionalReport. Each worker connection adds the shards it receives to its own partial
+ * report, on its own thread, and the partials are merged at each checkpoint and at the end.
+ * <p>
+ * With -checkpoint, the run can be resumed after it is killed. Every few shards (-sync) the
+ * output is forced to disk and a BatchCheckpoint is saved, holding the shards that finished
+ * ahead of the written output and the merged report for everything finished so far. Running
+ * the same command again skips the lines the checkpoint covers and appends to the output from
+ * there. A finished run deletes its checkpoint.
+ * <p>
+ * Usage: java taxCalculator.BatchCoordinator [-shard size] [-retries count] [-report file]
+ * [-checkpoint file] [-sync shards] input output host:port...
+ * <br>An output of "-" writes the results to standard out, and cannot be checkpointed.
+ */
+public class BatchCoordinator {
+	private static final int CONNECT_TIMEOUT = 5000;
+	private static final int READ_TIMEOUT = 120000;
+	private static final int RECONNECT_DELAY = 1000;
+	private static final byte[] NEWLINE = {'\n'};
+
+	private final List<InetSocketAddress> workers;
+	private final int shardSize;
+	private final int maxRetries;
+	private final boolean reporting;
+	private final int syncEvery;
+
+	private List<List<String>> shards;
+	private String[][] results;
+	private BlockingQueue<Integer> completed;
+	private AtomicIntegerArray failures;
+	private BlockingQueue<Integer> pending;
+	private CountDownLatch remaining;
+	private AtomicInteger liveWorkers;
+	private volatile String fatalError;
+	private boolean[] ready;
+	private long firstLine;
+
+	/** Guards the partial reports, so that a checkpoint sees every finished shard's results
+	 * together with its contribution to the report. **/
+	private final Object progress = new Object();
+	private List<DistributionalReport> partials;
+	private DistributionalReport base;
+	private DistributionalReport report;
+
+	private byte[] inputHash;
+	private long inputLines;
+	private long committedLines;
+	private long outputLength;
+	private FileOutputStream syncTarget;
+	private File checkpointFile;
+
+	/** @param syncEvery how many shards to write between checkpoints, when the run has one. **/
+	public BatchCoordinator(List<InetSocketAddress> workers, int shardSize, int maxRetries, boolean reporting, int syncEvery) {
+		if (workers.isEmpty()) {
+			throw new IllegalArgumentException("At least one worker is needed");
+		}
+		if (shardSize < 1) {
+			throw new IllegalArgumentException("Shard size must be positive");
+		}
+		if (syncEvery < 1) {
+			throw new IllegalArgumentException("Shards between checkpoints must be positive");
+		}
+		this.workers = workers;
+		this.shardSize = shardSize;
+		this.maxRetries = maxRetries;
+		this.reporting = reporting;
+		this.syncEvery = syncEvery;
+	}
+
+	/** Runs every filer line through the workers, writing one result line per filer line to
+	 * out in input order.
+	 * @throws IOException if the run cannot be finished.
+	 */
+	public void run(List<String> lines, OutputStream out) throws IOException {
+		base = reporting ? new DistributionalReport() : null;
+		inputLines = lines.size();
+		committedLines = 0;
+		outputLength = 0;
+		execute(lines, 0, out, new HashMap<Long, String[]>());
+	}
+
+	/** Runs every filer line through the workers like run(lines, out), saving a checkpoint
+	 * every syncEvery shards. If the checkpoint file already exists, the run resumes from it:
+	 * the output is cut back to what the checkpoint covers, and only the remaining lines are sent.
+	 * When the run finishes, the checkpoint is deleted.
+	 * @throws IOException if the run cannot be finished, or the checkpoint does not match
+	 * this input, shard size and output.
+	 */
+	public void run(List<String> lines, File output, File checkpoint) throws IOException {
+		BatchCheckpoint saved = BatchCheckpoint.read(checkpoint);
+		base = reporting ? new DistributionalReport() : null;
+		Map<Long, String[]> finished = new HashMap<>();
+		inputHash = BatchCheckpoint.hash(lines);
+		inputLines = lines.size();
+		committedLines = 0;
+		outputLength = 0;
+		if (saved != null) {
+			if (!saved.matches(inputHash, inputLines, shardSize)) {
+				throw new IOException(checkpoint + " was made for a different input or shard size;"
+						+ " delete it to start the run over");
+			}
+			if (output.length() < saved.outputLength) {
+				throw new IOException(output + " is shorter than " + checkpoint + " says it should be");
+			}
+			if (reporting && saved.report == null) {
+				throw new IOException(checkpoint + " was made without a report, so one cannot be resumed");
+			}
+			committedLines = saved.committedLines;
+			outputLength = saved.outputLength;
+			finished = saved.finishedShards;
+			if (reporting) {
+				base = saved.report;
+			}
+			System.err.println("Resuming after " + committedLines + " of " + inputLines + " filers");
+		}
+
+		// Drop anything written after the last checkpoint; those rows will be computed again.
+		try (RandomAccessFile file = new RandomAccessFile(output, "rw")) {
+			file.setLength(outputLength);
+		}
+		try (FileOutputStream stream = new FileOutputStream(output, true)) {
+			syncTarget = stream;
+			checkpointFile = checkpoint;
+			BufferedOutputStream out = new BufferedOutputStream(stream, 1 << 16);
+			execute(lines, (int) committedLines, out, finished);
+			out.flush();
+			stream.getFD().sync();
+		} finally {
+			syncTarget = null;
+			checkpointFile = null;
+		}
+		// The output is complete and on disk, so there is nothing left to resume.
+		Files.deleteIfExists(checkpoint.toPath());
+	}
+
+	/** Sends the lines from start onwards to the workers, and writes each shard's results once
+	 * every shard before it has been written.
+	 * @param finished results already known from a checkpoint, by the line each shard starts at.
+	 * These shards are written without being sent again.
+	 */
+	private void execute(List<String> lines, int start, OutputStream out, Map<Long, String[]> finished) throws IOException {
+		shards = new ArrayList<>();
+		for (int i = start; i < lines.size(); i += shardSize) {
+			shards.add(lines.subList(i, Math.min(i + shardSize, lines.size())));
+		}
+		firstLine = start;
+		report = null;
+		results = new String[shards.size()][];
+		ready = new boolean[shards.size()];
+		completed = new LinkedBlockingQueue<>();
+		failures = new AtomicIntegerArray(shards.size());
+		pending = new LinkedBlockingQueue<>();
+		for (int i = 0; i < shards.size(); i++) {
+			String[] known = finished.get(firstLine + (long) i * shardSize);
+			if (known != null && known.length == shards.get(i).size()) {
+				results[i] = known;
+				ready[i] = true;
+			} else {
+				pending.add(i);
+			}
+		}
+		partials = new ArrayList<>();
+		remaining = new CountDownLatch(pending.size());
+		liveWorkers = new AtomicInteger(workers.size());
+		fatalError = null;
+
+		List<Thread> threads = new ArrayList<>();
+		for (final InetSocketAddress worker : workers) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						drive(worker);
+					} finally {
+						liveWorkers.decrementAndGet();
+					}
+				}
+			}, "batch-" + worker);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+
+		int next = 0;
+		try {
+			while (true) {
+				while (next < shards.size() && ready[next]) {
+					commit(next, out);
+					next++;
+					if (checkpointFile != null && next % syncEvery == 0) {
+						checkpoint(out, next);
+					}
+				}
+				if (next == shards.size()) {
+					break;
+				}
+				if (fatalError != null) {
+					throw new IOException(fatalError);
+				}
+				// Workers leave once the last shard is handed in, so they are only lost if shards
+				// are still outstanding and nothing finished is waiting to be written.
+				if (liveWorkers.get() == 0 && completed.isEmpty() && remaining.getCount() > 0) {
+					throw new IOException("Every worker has been lost with " + remaining.getCount() + " shards left");
+				}
+				Integer done = completed.poll(1, TimeUnit.SECONDS);
+				if (done != null) {
+					ready[done] = true;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for workers");
+		} finally {
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+		}
+		out.flush();
+		if (reporting) {
+			synchronized (progress) {
+				report = mergedReport();
+			}
+		}
+	}
+
+	/** Writes a finished shard's results. Its filers were already added to a partial report
+	 * by the connection that received it.
+	 */
+	private void commit(int shard, OutputStream out) throws IOException {
+		String[] answer = results[shard];
+		for (String line : answer) {
+			byte[] bytes = line.getBytes("UTF-8");
+			out.write(bytes);
+			out.write(NEWLINE);
+			outputLength += bytes.length + NEWLINE.length;
+		}
+		committedLines += answer.length;
+		results[shard] = null;
+	}
+
+	/** Forces everything written so far to disk, then saves a checkpoint that covers it. The
+	 * partial reports also include shards that have finished but are not written yet, so those
+	 * shards' results are saved with the checkpoint too.
+	 */
+	private void checkpoint(OutputStream out, int next) throws IOException {
+		out.flush();
+		syncTarget.getFD().sync();
+		Map<Long, String[]> finished = new TreeMap<>();
+		DistributionalReport snapshot = null;
+		synchronized (progress) {
+			Integer done;
+			while ((done = completed.poll()) != null) {
+				ready[done] = true;
+			}
+			for (int i = next; i < shards.size(); i++) {
+				if (ready[i]) {
+					finished.put(firstLine + (long) i * shardSize, results[i]);
+				}
+			}
+			if (reporting) {
+				snapshot = mergedReport();
+			}
+		}
+		new BatchCheckpoint(inputHash, inputLines, shardSize, committedLines, outputLength, finished, snapshot)
+				.write(checkpointFile);
+	}
+
+	/** Merges the report carried over from a checkpoint with every connection's partial.
+	 * Callers must hold the progress lock.
+	 */
+	private DistributionalReport mergedReport() {
+		DistributionalReport merged = new DistributionalReport();
+		merged.merge(base);
+		for (DistributionalReport partial : partials) {
+			merged.merge(partial);
+		}
+		return merged;
+	}
+
+	/** @return the report for the last run, or null if the coordinator was not asked for one. **/
+	public DistributionalReport report() {
+		return report;
+	}
+
+	/** Feeds shards to one worker until the run is over. Whenever the connection breaks or a
+	 * shard's results cannot be used, the shard in flight goes back in the queue and the worker
+	 * is reconnected, up to maxRetries failed connections in a row.
+	 */
+	private void drive(InetSocketAddress worker) {
+		DistributionalReport partial = null;
+		if (reporting) {
+			partial = new DistributionalReport();
+			synchronized (progress) {
+				partials.add(partial);
+			}
+		}
+		int failedConnects = 0;
+		while (remaining.getCount() > 0 && fatalError == null) {
+			Socket socket = new Socket();
+			Integer shard = null;
+			try {
+				socket.connect(worker, CONNECT_TIMEOUT);
+				socket.setSoTimeout(READ_TIMEOUT);
+				// Each shard is a request and a reply, so don't let small writes wait for an ACK.
+				socket.setTcpNoDelay(true);
+				failedConnects = 0;
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+				BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+
+				while (remaining.getCount() > 0 && fatalError == null) {
+					shard = pending.poll(100, TimeUnit.MILLISECONDS);
+					if (shard == null) {
+						continue;
+					}
+					String[] answer = send(shard, in, out);
+					DistributionalReport added = null;
+					if (partial != null) {
+						// Build the shard's report outside the lock, so connections only wait on each
+						// other to merge, and a shard that fails part way leaves the partial untouched.
+						added = shardReport(shard, answer);
+					}
+					synchronized (progress) {
+						if (partial != null) {
+							partial.merge(added);
+						}
+						results[shard] = answer;
+						completed.add(shard);
+					}
+					shard = null;
+					remaining.countDown();
+				}
+				out.write("QUIT");
+				out.newLine();
+				out.flush();
+			} catch (IOException | RuntimeException e) {
+				if (shard != null) {
+					retry(shard, worker, e);
+				} else {
+					failedConnects++;
+				}
+				if (failedConnects > maxRetries) {
+					System.err.println("Giving up on worker " + worker + ": " + e.getMessage());
+					return;
+				}
+				try {
+					Thread.sleep(RECONNECT_DELAY);
+				} catch (InterruptedException ie) {
+					return;
+				}
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// the connection is already gone
+				}
+			}
+		}
+	}
+
+	private String[] send(int shard, BufferedReader in, BufferedWriter out) throws IOException {
+		List<String> lines = shards.get(shard);
+		out.write("SHARD " + shard + " " + lines.size());
+		out.newLine();
+		for (String line : lines) {
+			out.write(line);
+			out.newLine();
+		}
+		out.flush();
+
+		String header = in.readLine();
+		String expected = "RESULT " + shard + " " + lines.size();
+		if (header == null) {
+			throw new EOFException("Worker closed the connection during shard " + shard);
+		}
+		if (!header.equals(expected)) {
+			throw new IOException("Expected \"" + expected + "\" but the worker sent \"" + header + "\"");
+		}
+		String[] answer = new String[lines.size()];
+		for (int i = 0; i < answer.length; i++) {
+			answer[i] = in.readLine();
+			if (answer[i] == null) {
+				throw new EOFException("Worker closed the connection during shard " + shard);
+			}
+		}
+		return answer;
+	}
+
+	/** Reads a shard's filers and their results into a report of their own. Filers the worker
+	 * could not read are left out.
+	 * @throws IOException if the worker sent something that is not a result line.
+	 */
+	private DistributionalReport shardReport(int shard, String[] answer) throws IOException {
+		List<String> lines = shards.get(shard);
+		DistributionalReport added = new DistributionalReport();
+		for (int i = 0; i < answer.length; i++) {
+			if (answer[i].startsWith("ERROR")) {
+				continue;
+			}
+			try {
+				added.add(Filer.parse(lines.get(i)), TaxResult.parse(answer[i]));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Bad result for shard " + shard + ": " + e.getMessage(), e);
+			}
+		}
+		return added;
+	}
+
+	private void retry(int shard, InetSocketAddress worker, Exception cause) {
+		int attempts = failures.incrementAndGet(shard);
+		System.err.println("Shard " + shard + " failed on " + worker + " (attempt " + attempts + "): " + cause.getMessage());
+		if (attempts > maxRetries) {
+			fatalError = "Shard " + shard + " failed " + attempts + " times, last on " + worker + ": " + cause.getMessage();
+		} else {
+			pending.add(shard);
+		}
+	}
+
+	/** Reads a host:port pair, such as localhost:7001. **/
+	static InetSocketAddress parseAddress(String text) {
+		int colon = text.lastIndexOf(':');
+		if (colon < 0) {
+			throw new IllegalArgumentException("Expected host:port but found " + text);
+		}
+		return new InetSocketAddress(text.substring(0, colon), Integer.parseInt(text.substring(colon + 1)));
+	}
+
+	/** Reads every non-blank line of a file. **/
+	static List<String> readLines(String path) throws IOException {
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().isEmpty()) {
+					lines.add(line);
+				}
+			}
+		}
+		return lines;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int shardSize = 1000;
+		int retries = 3;
+		String reportPath = null;
+		String checkpointPath = null;
+		int syncEvery = 10;
+		int arg = 0;
+		while (arg < args.length && args[arg].startsWith("-") && !args[arg].equals("-")) {
+			if (args[arg].equals("-shard") && arg + 1 < args.length) {
+				shardSize = Integer.parseInt(args[arg + 1]);
+			} else if (args[arg].equals("-retries") && arg + 1 < args.length) {
+				retries = Integer.parseInt(args[arg + 1]);
+			} else if (args[arg].equals("-report") && arg + 1 < args.length) {
+				reportPath = args[arg + 1];
+			} else if (args[arg].equals("-checkpoint") && arg + 1 < args.length) {
+				checkpointPath = args[arg + 1];
+			} else if (args[arg].equals("-sync") && arg + 1 < args.length) {
+				syncEvery = Integer.parseInt(args[arg + 1]);
+			} else {
+				break;
+			}
+			arg += 2;
+		}
+		if (args.length - arg < 3 || (checkpointPath != null && args[arg + 1].equals("-"))) {
+			System.err.println("Usage: java taxCalculator.BatchCoordinator [-shard size] [-retries count] [-report file]"
+					+ " [-checkpoint file] [-sync shards] input output host:port...");
+			System.exit(2);
+		}
+
+		String input = args[arg];
+		String output = args[arg + 1];
+		List<InetSocketAddress> workers = new ArrayList<>();
+		for (int i = arg + 2; i < args.length; i++) {
+			workers.add(parseAddress(args[i]));
+		}
+
+		BatchCoordinator coordinator = new BatchCoordinator(workers, shardSize, retries, reportPath != null, syncEvery);
+		List<String> lines = readLines(input);
+		if (checkpointPath != null) {
+			coordinator.run(lines, new File(output), new File(checkpointPath));
+		} else if (output.equals("-")) {
+			coordinator.run(lines, System.out);
+		} else {
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16)) {
+				coordinator.run(lines, out);
+			}
+		}
+
+		if (reportPath != null) {
+			try (PrintStream out = new PrintStream(new FileOutputStream(reportPath), false, "UTF-8")) {
+				coordinator.report().print(out);
+			}
+		}
+	}
+}
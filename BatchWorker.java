@@ -0,0 +1,103 @@
+package taxCalculator;
+
+import java.io.*;
+import java.net.*;
+
+/** A batch worker listens on a port and calculates tax results for the shards of filers that
+ * a BatchCoordinator sends it. Since the calculator only holds one filer at a time, each worker
+ * JVM works on one filer at a time as well; to use more cores, start more workers.
+ * <p>
+ * The protocol is plain text, one line per message. The coordinator sends
+ * "SHARD id count" followed by count filer lines, and the worker answers with
+ * "RESULT id count" followed by count result lines (see TaxResult) in the same order. A filer
+ * line that cannot be read is answered with "ERROR message" in its place. "QUIT" closes the connection.
+ * <p>
+ * Usage: java taxCalculator.BatchWorker port
+ */
+public class BatchWorker {
+	private final int port;
+
+	public BatchWorker(int port) {
+		this.port = port;
+	}
+
+	/** Accepts coordinator connections until the process is killed. Each connection is served
+	 * on its own thread, so a coordinator that reconnects after an error is not kept waiting.
+	 */
+	public void serve() throws IOException {
+		ServerSocket server = new ServerSocket(port);
+		System.err.println("Batch worker listening on port " + server.getLocalPort());
+		while (true) {
+			final Socket socket = server.accept();
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						handle(socket);
+					} catch (IOException e) {
+						System.err.println("Connection from " + socket.getRemoteSocketAddress() + " lost: " + e.getMessage());
+					} finally {
+						try {
+							socket.close();
+						} catch (IOException e) {
+							// nothing left to clean up
+						}
+					}
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void handle(Socket socket) throws IOException {
+		socket.setTcpNoDelay(true);
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+
+		String header;
+		while ((header = in.readLine()) != null) {
+			if (header.equals("QUIT")) {
+				return;
+			}
+			String[] parts = header.split(" ");
+			if (parts.length != 3 || !parts[0].equals("SHARD")) {
+				throw new IOException("Unexpected message: " + header);
+			}
+			int count = Integer.parseInt(parts[2]);
+
+			// Read the whole shard before answering, so neither side blocks on a full socket buffer.
+			String[] lines = new String[count];
+			for (int i = 0; i < count; i++) {
+				lines[i] = in.readLine();
+				if (lines[i] == null) {
+					throw new EOFException("Shard " + parts[1] + " ended after " + i + " of " + count + " filers");
+				}
+			}
+
+			out.write("RESULT " + parts[1] + " " + count);
+			out.newLine();
+			for (String line : lines) {
+				out.write(evaluate(line));
+				out.newLine();
+			}
+			out.flush();
+		}
+	}
+
+	/** Calculates the result line for one filer line. **/
+	static String evaluate(String line) {
+		try {
+			return Filer.parse(line).evaluate().toString();
+		} catch (RuntimeException e) {
+			return "ERROR " + e.getMessage();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: java taxCalculator.BatchWorker port");
+			System.exit(2);
+		}
+		new BatchWorker(Integer.parseInt(args[0])).serve();
+	}
+}
@@ -0,0 +1,211 @@
+package taxCalculator;
+
+import java.io.*;
+import java.util.*;
+
+/** This class summarizes how the tax burden is distributed across many filers. It groups filers
+ * three ways -- by state, by filing status and by income decile -- and for each group reports
+ * the total and mean burden, effective rate percentiles, and how often each credit was claimed.
+ * <p>
+ * Filers are added one at a time and then forgotten, so memory stays the same no matter how
+ * many are added. Income deciles cannot be known until every filer has been seen, so filers are
+ * first counted in narrow income bands, each 5% wider than the last, and the bands are combined
+ * into deciles when the report is printed. A decile boundary is therefore accurate to one band.
+ * <p>
+ * Reports built on different threads can be merged, which gives the same report as adding every
+ * filer to one.
+ * <p>
+ * Usage: java taxCalculator.DistributionalReport input
+ * <br>Lines that are not valid filers are reported on standard error and left out.
+ */
+public class DistributionalReport {
+	static final double BAND_GROWTH = 1.05;
+	static final int BANDS = 2 + (int) Math.ceil(Math.log(1e10) / Math.log(BAND_GROWTH));
+
+	final Map<String, GroupStats> byState = new TreeMap<>();
+	GroupStats single = new GroupStats();
+	GroupStats married = new GroupStats();
+	final GroupStats[] incomeBands = new GroupStats[BANDS];
+
+	public void add(Filer filer, TaxResult result) {
+		double income = filer.totalIncome();
+		// Find the band before touching any group, so a filer that cannot be added leaves the report as it was.
+		int band = band(income);
+		group(byState, filer.state.isEmpty() ? "(none)" : filer.state).add(income, result);
+		(filer.married ? married : single).add(income, result);
+		if (incomeBands[band] == null) {
+			incomeBands[band] = new GroupStats();
+		}
+		incomeBands[band].add(income, result);
+	}
+
+	public void merge(DistributionalReport other) {
+		for (Map.Entry<String, GroupStats> entry : other.byState.entrySet()) {
+			group(byState, entry.getKey()).merge(entry.getValue());
+		}
+		single.merge(other.single);
+		married.merge(other.married);
+		for (int i = 0; i < BANDS; i++) {
+			if (other.incomeBands[i] != null) {
+				if (incomeBands[i] == null) {
+					incomeBands[i] = new GroupStats();
+				}
+				incomeBands[i].merge(other.incomeBands[i]);
+			}
+		}
+	}
+
+	private static GroupStats group(Map<String, GroupStats> groups, String key) {
+		GroupStats stats = groups.get(key);
+		if (stats == null) {
+			stats = new GroupStats();
+			groups.put(key, stats);
+		}
+		return stats;
+	}
+
+	/** Band 0 holds filers with no income; band 1 holds incomes below $1; after that each band
+	 * starts where the last one ended and is 5% wider.
+	 */
+	static int band(double income) {
+		if (income <= 0) {
+			return 0;
+		}
+		// Clamp before casting, since an income too large for an int band would wrap around.
+		double band = 1 + Math.floor(Math.log(Math.max(income, 1)) / Math.log(BAND_GROWTH));
+		return (int) Math.min(band, BANDS - 1);
+	}
+
+	static double bandFloor(int band) {
+		return band <= 1 ? 0 : Math.pow(BAND_GROWTH, band - 1);
+	}
+
+	public void print(PrintStream out) {
+		out.println("By state");
+		header(out);
+		for (Map.Entry<String, GroupStats> entry : byState.entrySet()) {
+			row(out, entry.getKey(), entry.getValue());
+		}
+
+		out.println();
+		out.println("By filing status");
+		header(out);
+		row(out, "Single", single);
+		row(out, "Married", married);
+
+		out.println();
+		out.println("By income decile");
+		header(out);
+		long total = 0;
+		for (GroupStats band : incomeBands) {
+			if (band != null) {
+				total += band.filers;
+			}
+		}
+		GroupStats[] deciles = new GroupStats[10];
+		double[] floors = new double[10];
+		long seen = 0;
+		for (int i = 0; i < BANDS; i++) {
+			GroupStats band = incomeBands[i];
+			if (band == null) {
+				continue;
+			}
+			// A band goes in the decile that its middle filer falls in.
+			int decile = (int) Math.min(9, (long) (10 * (seen + band.filers / 2.0) / total));
+			if (deciles[decile] == null) {
+				deciles[decile] = new GroupStats();
+				floors[decile] = bandFloor(i);
+			}
+			deciles[decile].merge(band);
+			seen += band.filers;
+		}
+		for (int d = 0; d < 10; d++) {
+			if (deciles[d] != null) {
+				row(out, String.format(Locale.ROOT, "%d (from $%.0f)", d + 1, floors[d]), deciles[d]);
+			}
+		}
+	}
+
+	/** Saves the report for a checkpoint. Only the income bands that hold filers are written. **/
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(byState.size());
+		for (Map.Entry<String, GroupStats> entry : byState.entrySet()) {
+			out.writeUTF(entry.getKey());
+			entry.getValue().write(out);
+		}
+		single.write(out);
+		married.write(out);
+		int used = 0;
+		for (GroupStats band : incomeBands) {
+			if (band != null) {
+				used++;
+			}
+		}
+		out.writeInt(used);
+		for (int i = 0; i < BANDS; i++) {
+			if (incomeBands[i] != null) {
+				out.writeShort(i);
+				incomeBands[i].write(out);
+			}
+		}
+	}
+
+	public static DistributionalReport read(DataInput in) throws IOException {
+		DistributionalReport report = new DistributionalReport();
+		int states = in.readInt();
+		for (int i = 0; i < states; i++) {
+			String state = in.readUTF();
+			report.byState.put(state, GroupStats.read(in));
+		}
+		report.single = GroupStats.read(in);
+		report.married = GroupStats.read(in);
+		int used = in.readInt();
+		for (int i = 0; i < used; i++) {
+			int band = in.readShort();
+			report.incomeBands[band] = GroupStats.read(in);
+		}
+		return report;
+	}
+
+	private static void header(PrintStream out) {
+		out.println(String.format(Locale.ROOT, "%-20s %10s %16s %12s %12s %12s %12s %10s %14s %10s %14s %10s %14s",
+				"Group", "Filers", "Total burden", "Mean burden", "p10", "p50", "p90",
+				"EITC", "EITC ($)", "Child", "Child ($)", "AOTC", "AOTC ($)"));
+	}
+
+	private static void row(PrintStream out, String name, GroupStats stats) {
+		out.println(String.format(Locale.ROOT, "%-20s %10d %16.2f %12.2f %12s %12s %12s %10d %14.2f %10d %14.2f %10d %14.2f",
+				name, stats.filers, stats.totalBurden, stats.meanBurden(),
+				RateSketch.percent(stats.rates.quantile(.1)), RateSketch.percent(stats.rates.quantile(.5)),
+				RateSketch.percent(stats.rates.quantile(.9)),
+				stats.eitcClaims, stats.eitcTotal, stats.childCreditClaims, stats.childCreditTotal,
+				stats.aotcClaims, stats.aotcTotal));
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: java taxCalculator.DistributionalReport input");
+			System.exit(2);
+		}
+
+		DistributionalReport report = new DistributionalReport();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), "UTF-8"))) {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				// Like the batch workers, a filer that cannot be read is left out of the report.
+				try {
+					Filer filer = Filer.parse(line);
+					report.add(filer, filer.evaluate());
+				} catch (RuntimeException e) {
+					System.err.println("Skipping line " + number + ": " + e.getMessage());
+				}
+			}
+		}
+		report.print(System.out);
+	}
+}
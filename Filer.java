@@ -0,0 +1,146 @@
+package taxCalculator;
+
+/** This class holds a single filer's household, so that many filers can be run through the
+ * calculator without anyone typing them into the GUI. A filer is written as one comma separated
+ * line, with the fields in the same order that they appear below:
+ * <p>
+ * state, income, capitalGains, mortgageValue, charitableGivings, medicalExpenses, age, spouseAge,
+ * children, childrenInCollege, americanCitizen, employed, blind, married, spouseBlind
+ * <p>
+ * The state must be one that StateIncomeTax knows, or empty for none, and the last five fields
+ * must be "true" or "false".
+ * <p>
+ * The calculator itself reads the static fields of UserInterface, so a filer is evaluated by
+ * copying its values into those fields. Only one filer can be loaded at a time, which is why
+ * evaluation is synchronized.
+ */
+public class Filer {
+	/** The number of comma separated fields in a filer line. **/
+	public static final int FIELDS = 15;
+
+	String state = "";
+	double income;
+	double capitalGains;
+	double mortgageValue;
+	double charitableGivings;
+	double medicalExpenses;
+	int age;
+	int spouseAge;
+	int children;
+	int childrenInCollege;
+	boolean americanCitizen;
+	boolean employed;
+	boolean blind;
+	boolean married;
+	boolean spouseBlind;
+
+	/** Reads a filer from one comma separated line.
+	 * @return the filer described by the line.
+	 * @throws IllegalArgumentException if the line does not have the right number of fields,
+	 * the state is unknown, an amount is not finite, or a number or true/false field cannot be read.
+	 */
+	public static Filer parse(String line) {
+		String[] parts = line.split(",", -1);
+		if (parts.length != FIELDS) {
+			throw new IllegalArgumentException("Expected " + FIELDS + " fields but found " + parts.length + ": " + line);
+		}
+
+		Filer filer = new Filer();
+		try {
+			filer.state = parts[0].trim();
+			if (!StateIncomeTax.knownState(filer.state)) {
+				throw new IllegalArgumentException("Unknown state \"" + filer.state + "\" in filer line: " + line);
+			}
+			filer.income = amount(parts[1], line);
+			filer.capitalGains = amount(parts[2], line);
+			filer.mortgageValue = amount(parts[3], line);
+			filer.charitableGivings = amount(parts[4], line);
+			filer.medicalExpenses = amount(parts[5], line);
+			filer.age = Integer.parseInt(parts[6].trim());
+			filer.spouseAge = Integer.parseInt(parts[7].trim());
+			filer.children = Integer.parseInt(parts[8].trim());
+			filer.childrenInCollege = Integer.parseInt(parts[9].trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad number in filer line: " + line, e);
+		}
+		filer.americanCitizen = flag(parts[10], line);
+		filer.employed = flag(parts[11], line);
+		filer.blind = flag(parts[12], line);
+		filer.married = flag(parts[13], line);
+		filer.spouseBlind = flag(parts[14], line);
+		return filer;
+	}
+
+	/** Reads a dollar amount. NaN and infinite amounts parse as numbers but are rejected, since
+	 * no tax can be worked out from them. **/
+	private static double amount(String field, String line) {
+		double value = Double.parseDouble(field.trim());
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			throw new IllegalArgumentException("Expected a finite amount but found \"" + field.trim() + "\" in filer line: " + line);
+		}
+		return value;
+	}
+
+	/** Reads a true/false field. Anything else is rejected rather than taken as false. **/
+	private static boolean flag(String field, String line) {
+		String value = field.trim();
+		if (value.equalsIgnoreCase("true")) {
+			return true;
+		} else if (value.equalsIgnoreCase("false")) {
+			return false;
+		}
+		throw new IllegalArgumentException("Expected true or false but found \"" + value + "\" in filer line: " + line);
+	}
+
+	/** Copies this filer into the fields that TaxCalculator reads. Callers must hold the
+	 * lock on Filer.class until they are done with the calculator.
+	 */
+	void load() {
+		UserInterface.state = state;
+		UserInterface.income = income;
+		UserInterface.capitalGains = capitalGains;
+		UserInterface.mortgageValue = mortgageValue;
+		UserInterface.charitableGivings = charitableGivings;
+		UserInterface.medicalExpenses = medicalExpenses;
+		UserInterface.age = age;
+		UserInterface.spouseAge = spouseAge;
+		UserInterface.children = children;
+		UserInterface.childrenInCollege = childrenInCollege;
+		UserInterface.americanCitizen = americanCitizen;
+		UserInterface.employed = employed;
+		UserInterface.blind = blind;
+		UserInterface.married = married;
+		UserInterface.spouseBlind = spouseBlind;
+	}
+
+	/** Loads this filer and runs it through the calculator.
+	 * @return this filer's total tax burden. If negative, the government owes money to the filer.
+	 */
+	public double taxBurden() {
+		synchronized (Filer.class) {
+			load();
+			return TaxCalculator.taxBurdenCalculator();
+		}
+	}
+
+	/** Loads this filer and runs it through the calculator, keeping the individual credits.
+	 * Agi is worked out once and shared by the tax and every credit.
+	 * @return this filer's tax burden and credits.
+	 */
+	public TaxResult evaluate() {
+		synchronized (Filer.class) {
+			load();
+			double agi = TaxCalculator.agi();
+			double eitc = TaxCalculator.eitc(agi);
+			double childCredit = TaxCalculator.childCredit(agi);
+			double aotc = TaxCalculator.aotc(agi);
+			double burden = TaxCalculator.taxBeforeCredits(agi) - (aotc + eitc + childCredit);
+			return new TaxResult(burden, eitc, childCredit, aotc);
+		}
+	}
+
+	/** @return the filer's income from every source, which effective tax rates are measured against. **/
+	public double totalIncome() {
+		return income + capitalGains;
+	}
+}
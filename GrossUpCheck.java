@@ -0,0 +1,167 @@
+package taxCalculator;
+
+import java.util.*;
+
+/** This class checks GrossUpSolver against the calculator the slow way. For random households
+ * and targets it steps through every income up to a limit, finds where the after-tax amount or
+ * tax burden reaches the target, and compares those incomes with the ones the solver returns.
+ * Half the targets are the value at one of the solver's breaks, where a credit ends and a
+ * solution is easiest to miss. A mismatch is printed along with the household, and the program
+ * exits with status 1.
+ * <p>
+ * Usage: java taxCalculator.GrossUpCheck [households] [seed]
+ */
+public class GrossUpCheck {
+	/** How far to scan, and how finely. Solutions agree if they are within two steps. **/
+	static final double SCAN_LIMIT = 400000;
+	static final double STEP = 5;
+	/** A change larger than this in one step is taken as a jump, which no slope in the
+	 * calculator comes close to. **/
+	static final double JUMP = 20;
+
+	private static final String[] STATES = {"California", "New York", "Texas", "Tennessee", ""};
+
+	public static void main(String[] args) {
+		int households = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 7;
+		Random random = new Random(seed);
+
+		int mismatches = 0;
+		for (int i = 0; i < households; i++) {
+			String line = STATES[random.nextInt(STATES.length)] + ",0," + (random.nextBoolean() ? 0 : 5000)
+					+ "," + random.nextInt(20000) + "," + random.nextInt(5000) + "," + random.nextInt(30000)
+					+ "," + (20 + random.nextInt(60)) + "," + random.nextInt(80) + "," + random.nextInt(4)
+					+ "," + random.nextInt(3) + ",true," + random.nextBoolean() + "," + random.nextBoolean()
+					+ "," + random.nextBoolean() + "," + random.nextBoolean();
+			Filer filer = Filer.parse(line);
+			boolean net = random.nextBoolean();
+			double target = net ? random.nextInt(300000) : random.nextInt(60000) - 5000;
+			if (random.nextBoolean()) {
+				// Targets reached exactly at a break, such as the last income before a credit ends,
+				// are the easiest to lose to rounding.
+				double[] breaks = GrossUpSolver.breakpoints(filer);
+				target = value(filer, breaks[random.nextInt(breaks.length)], net);
+			}
+
+			List<Double> solved = net ? GrossUpSolver.incomeForNet(filer, target) : GrossUpSolver.incomeForBurden(filer, target);
+			List<Double> scanned = scan(filer, target, net);
+			if (!agree(solved, scanned)) {
+				mismatches++;
+				System.out.println("Mismatch for " + line + (net ? " net " : " burden ") + target
+						+ ": solver " + solved + ", scan " + scanned);
+			}
+		}
+		System.out.println(mismatches + " mismatches in " + households + " households");
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	}
+
+	/** Steps through incomes and records where the value reaches the target: the first income
+	 * of each stretch that is on target, each place the value passes through the target between
+	 * two steps, and each jump that starts or ends on the target. Places where it jumps over the
+	 * target are not solutions.
+	 */
+	static List<Double> scan(Filer filer, double target, boolean net) {
+		List<Double> found = new ArrayList<>();
+		double previous = Double.NaN;
+		boolean onTarget = false;
+		for (double income = 0; income <= SCAN_LIMIT; income += STEP) {
+			double value = value(filer, income, net);
+			if (Math.abs(value - target) <= GrossUpSolver.TOLERANCE) {
+				if (!onTarget) {
+					found.add(income);
+				}
+				onTarget = true;
+			} else {
+				if (!onTarget && !Double.isNaN(previous)) {
+					double crossing = Double.NaN;
+					if ((previous - target) * (value - target) < 0) {
+						crossing = bisect(filer, target, net, income - STEP, income, previous);
+					} else if (Math.abs(value - previous) > JUMP) {
+						crossing = jump(filer, target, net, income - STEP, income, previous, value);
+					}
+					if (!Double.isNaN(crossing)) {
+						found.add(crossing);
+					}
+				}
+				onTarget = false;
+			}
+			previous = value;
+		}
+		return found;
+	}
+
+	/** Narrows a step in which the value passes the target down to where it does.
+	 * @return the income, or NaN if the value jumps over the target there.
+	 */
+	private static double bisect(Filer filer, double target, boolean net, double low, double high, double lowValue) {
+		for (int i = 0; i < 60; i++) {
+			double middle = (low + high) / 2;
+			if ((value(filer, middle, net) - target) * (lowValue - target) > 0) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		if (Math.abs(value(filer, high, net) - target) <= 2 * GrossUpSolver.TOLERANCE
+				|| Math.abs(value(filer, low, net) - target) <= 2 * GrossUpSolver.TOLERANCE) {
+			return high;
+		}
+		return Double.NaN;
+	}
+
+	/** Narrows a step in which the value jumps without passing the target down to the jump,
+	 * and checks whether the value just before or just after it is on the target.
+	 * @return the income, or NaN if neither side of the jump is on the target.
+	 */
+	private static double jump(Filer filer, double target, boolean net, double low, double high,
+			double lowValue, double highValue) {
+		for (int i = 0; i < 60; i++) {
+			double middle = (low + high) / 2;
+			double value = value(filer, middle, net);
+			if (Math.abs(value - lowValue) < Math.abs(value - highValue)) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		if (Math.abs(value(filer, low, net) - target) <= 2 * GrossUpSolver.TOLERANCE) {
+			return low;
+		}
+		if (Math.abs(value(filer, high, net) - target) <= 2 * GrossUpSolver.TOLERANCE) {
+			return high;
+		}
+		return Double.NaN;
+	}
+
+	/** @return whether every solution within the scan has a scanned match, and the other way around. **/
+	static boolean agree(List<Double> solved, List<Double> scanned) {
+		for (double income : solved) {
+			if (income <= SCAN_LIMIT && !near(income, scanned)) {
+				return false;
+			}
+		}
+		for (double income : scanned) {
+			if (!near(income, solved)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean near(double income, List<Double> incomes) {
+		for (double other : incomes) {
+			if (Math.abs(other - income) <= 2 * STEP) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static double value(Filer filer, double income, boolean net) {
+		filer.income = income;
+		double burden = filer.taxBurden();
+		return net ? income - burden : burden;
+	}
+}
@@ -0,0 +1,310 @@
+package taxCalculator;
+
+import java.io.*;
+import java.util.*;
+
+/** This class answers the calculator's question backwards: for a fixed household, what income
+ * gives a certain after-tax amount (income minus tax burden), or a certain tax burden?
+ * <p>
+ * For a fixed household the tax burden is a piecewise linear function of income. Its pieces
+ * end wherever a deduction starts or stops mattering (the medical expense floor, itemizing
+ * versus the standard deduction, adjusted gross income reaching zero) and wherever adjusted
+ * gross income crosses one of the calculator's thresholds: a tax bracket, the personal exemption
+ * phase-out, or an income limit on the earned income, child or American Opportunity credits.
+ * The solver works out where all of those breaks fall in terms of income, then solves the
+ * straight line on each piece directly. Finding the breaks takes two calculator runs for each
+ * of the few pieces of adjusted gross income, and solving takes two more for each piece of the
+ * tax burden.
+ * <p>
+ * Because the credits end abruptly, a higher income can mean a lower after-tax amount, and a
+ * target can be reached at several incomes. Every income that reaches it is returned. Where
+ * the target is reached along a flat stretch, only the start of the stretch is returned, or the
+ * first cent past it when the break that starts it belongs to the piece before.
+ * GrossUpCheck compares these answers with a slow scan over every income.
+ * <p>
+ * Usage: java taxCalculator.GrossUpSolver net|burden input
+ * <br>Each input line is a filer line followed by the target; the filer's income is ignored.
+ * Each output line lists the incomes found for that filer, "none", or "ERROR message" for a
+ * line that cannot be read.
+ */
+public class GrossUpSolver {
+	/** A solution is accepted if it reaches the target to within a cent. **/
+	static final double TOLERANCE = .01;
+
+	/** @return every income at which this household keeps the given amount after taxes.
+	 * @throws IllegalArgumentException if the amount is not finite.
+	 */
+	public static List<Double> incomeForNet(Filer filer, double net) {
+		return solve(filer, net, true);
+	}
+
+	/** @return every income at which this household owes the given tax burden.
+	 * @throws IllegalArgumentException if the burden is not finite.
+	 */
+	public static List<Double> incomeForBurden(Filer filer, double burden) {
+		return solve(filer, burden, false);
+	}
+
+	/** Solves for many households at once, such as every employee on a payroll.
+	 * @return the incomes found for each filer, in the same order as the filers.
+	 * @throws IllegalArgumentException if there is not exactly one target for each filer, or a
+	 * target is not finite.
+	 */
+	public static List<List<Double>> incomeForNet(List<Filer> filers, double[] nets) {
+		checkSizes(filers, nets);
+		List<List<Double>> answers = new ArrayList<>(filers.size());
+		for (int i = 0; i < filers.size(); i++) {
+			answers.add(incomeForNet(filers.get(i), nets[i]));
+		}
+		return answers;
+	}
+
+	/** Solves for many households at once.
+	 * @return the incomes found for each filer, in the same order as the filers.
+	 * @throws IllegalArgumentException if there is not exactly one target for each filer, or a
+	 * target is not finite.
+	 */
+	public static List<List<Double>> incomeForBurden(List<Filer> filers, double[] burdens) {
+		checkSizes(filers, burdens);
+		List<List<Double>> answers = new ArrayList<>(filers.size());
+		for (int i = 0; i < filers.size(); i++) {
+			answers.add(incomeForBurden(filers.get(i), burdens[i]));
+		}
+		return answers;
+	}
+
+	private static void checkSizes(List<Filer> filers, double[] targets) {
+		if (filers.size() != targets.length) {
+			throw new IllegalArgumentException(filers.size() + " filers but " + targets.length + " targets");
+		}
+	}
+
+	private static List<Double> solve(Filer filer, double target, boolean net) {
+		if (Double.isNaN(target) || Double.isInfinite(target)) {
+			throw new IllegalArgumentException("Expected a finite target but found " + target);
+		}
+		double original = filer.income;
+		try {
+			double[] breaks = breakpoints(filer);
+			List<Double> solutions = new ArrayList<>();
+			boolean previousFlat = false;
+			for (int k = 0; k < breaks.length; k++) {
+				double low = breaks[k];
+				double high = k + 1 < breaks.length ? breaks[k + 1] : Double.POSITIVE_INFINITY;
+				if (high - low < 1e-6) {
+					// The same break found twice with different rounding; there is nothing between.
+					continue;
+				}
+				// Sample inside the piece, away from the breaks, where the line is exact.
+				double width = high < Double.POSITIVE_INFINITY ? high - low : 100000;
+				double a = low + width / 3;
+				double b = low + 2 * width / 3;
+				double valueA = value(filer, a, net);
+				double slope = (value(filer, b, net) - valueA) / (b - a);
+
+				// A flat stretch on the target can span several pieces, and the piece after it can
+				// start on the target too. Only the start of the stretch counts.
+				boolean flat = Math.abs(slope) < 1e-9 && Math.abs(valueA - target) <= TOLERANCE;
+				boolean afterFlat = previousFlat;
+				previousFlat = flat;
+				if (flat && afterFlat) {
+					continue;
+				}
+
+				double candidate;
+				if (Math.abs(slope) < 1e-9) {
+					if (!flat) {
+						continue;
+					}
+					candidate = low;
+				} else {
+					candidate = a + (target - valueA) / slope;
+					// A target reached right at a break can land a rounding error outside the piece.
+					double slack = TOLERANCE / Math.abs(slope);
+					if (candidate < low - slack || candidate > high + slack) {
+						continue;
+					}
+					candidate = Math.max(low, Math.min(high, candidate));
+					if (afterFlat && candidate - low <= TOLERANCE) {
+						continue;
+					}
+				}
+				// A break itself may belong to the piece on either side, so check before accepting.
+				if (Math.abs(value(filer, candidate, net) - target) > TOLERANCE) {
+					candidate = Double.NaN;
+					if (Math.abs(slope) < 1e-9 && Math.abs(value(filer, low + TOLERANCE, net) - target) <= TOLERANCE) {
+						candidate = low + TOLERANCE;
+					}
+				}
+				if (!Double.isNaN(candidate)
+						&& (solutions.isEmpty() || candidate - solutions.get(solutions.size() - 1) > TOLERANCE)) {
+					solutions.add(candidate);
+				}
+			}
+			return solutions;
+		} finally {
+			filer.income = original;
+		}
+	}
+
+	/** @return the incomes, starting at 0 and in increasing order, at which this household's tax
+	 * burden can change slope or jump.
+	 */
+	static double[] breakpoints(Filer filer) {
+		double rate = StateIncomeTax.stateTaxDeduction(filer.state, 1);
+		double fixed = filer.charitableGivings + filer.mortgageValue;
+		double medical = filer.medicalExpenses;
+		double standard;
+		synchronized (Filer.class) {
+			filer.load();
+			standard = TaxCalculator.standardDeduction();
+		}
+
+		// Where adjusted gross income itself bends. Itemized deductions are
+		// fixed + rate * income + medical expenses above 7.5% of (income minus the other deductions).
+		TreeSet<Double> agiBreaks = new TreeSet<>();
+		agiBreaks.add(0.0);
+		double floor = TaxCalculator.MEDICAL_FLOOR;
+		double medicalSlope = rate - floor * (1 - rate);
+		double medicalBase = (1 + floor) * fixed + medical;
+		addIfValid(agiBreaks, (fixed + medical / floor) / (1 - rate));
+		addIfValid(agiBreaks, (standard - medicalBase) / medicalSlope);
+		addIfValid(agiBreaks, (standard - fixed) / rate);
+		addIfValid(agiBreaks, standard);
+		addIfValid(agiBreaks, medicalBase / (1 - medicalSlope));
+		addIfValid(agiBreaks, fixed / (1 - rate));
+
+		// Where adjusted gross income crosses a threshold of the calculator: a credit or exemption
+		// limit, or a tax bracket. Taxable income is adjusted gross income minus the personal
+		// exemption, which is either all or nothing.
+		double exemption = ((filer.married ? 2 : 1) + filer.children + filer.childrenInCollege)
+				* TaxCalculator.EXEMPTION_PER_PERSON;
+		List<Double> limits = new ArrayList<>(Arrays.asList(
+				TaxCalculator.CHILD_CREDIT_LIMIT_MARRIED, TaxCalculator.CHILD_CREDIT_LIMIT_SINGLE,
+				TaxCalculator.AOTC_LIMIT_MARRIED, TaxCalculator.AOTC_LIMIT_SINGLE,
+				TaxCalculator.EXEMPTION_LIMIT_MARRIED, TaxCalculator.EXEMPTION_LIMIT_SINGLE));
+		for (int i = 0; i < TaxCalculator.EITC_LIMITS_MARRIED.length; i++) {
+			limits.add(TaxCalculator.EITC_LIMITS_MARRIED[i]);
+			limits.add(TaxCalculator.EITC_LIMITS_SINGLE[i]);
+		}
+		for (double bracket : filer.married ? TaxCalculator.MARRIED_BRACKETS : TaxCalculator.SINGLE_BRACKETS) {
+			limits.add(bracket + exemption);
+			limits.add(bracket);
+		}
+
+		// Adjusted gross income is a straight line on each piece, so find each line once and
+		// invert every limit against the lines.
+		double[] pieces = toArray(agiBreaks);
+		double[] slopes = new double[pieces.length];
+		double[] intercepts = new double[pieces.length];
+		for (int k = 0; k < pieces.length; k++) {
+			double width = k + 1 < pieces.length ? pieces[k + 1] - pieces[k] : 100000;
+			double a = pieces[k] + width / 3;
+			double b = pieces[k] + 2 * width / 3;
+			double agiA = agiAt(filer, a);
+			slopes[k] = (agiAt(filer, b) - agiA) / (b - a);
+			intercepts[k] = agiA - slopes[k] * a;
+		}
+
+		TreeSet<Double> breaks = new TreeSet<>(agiBreaks);
+		for (double limit : limits) {
+			addIfValid(breaks, incomeForAgi(pieces, slopes, intercepts, limit));
+		}
+		return toArray(breaks);
+	}
+
+	/** Finds the income at which adjusted gross income reaches the given amount, from the
+	 * straight line on each piece. Adjusted gross income never falls as income rises.
+	 * @return the income, or NaN if the amount is never reached.
+	 */
+	private static double incomeForAgi(double[] pieces, double[] slopes, double[] intercepts, double agi) {
+		for (int k = 0; k < pieces.length; k++) {
+			if (slopes[k] <= 0) {
+				continue;
+			}
+			double high = k + 1 < pieces.length ? pieces[k + 1] : Double.POSITIVE_INFINITY;
+			double income = (agi - intercepts[k]) / slopes[k];
+			if (income >= pieces[k] && income <= high) {
+				return income;
+			}
+		}
+		return Double.NaN;
+	}
+
+	private static void addIfValid(Set<Double> points, double income) {
+		if (income > 0 && !Double.isInfinite(income)) {
+			points.add(income);
+		}
+	}
+
+	private static double[] toArray(Set<Double> points) {
+		double[] array = new double[points.size()];
+		int i = 0;
+		for (double point : points) {
+			array[i++] = point;
+		}
+		return array;
+	}
+
+	private static double value(Filer filer, double income, boolean net) {
+		filer.income = income;
+		double burden = filer.taxBurden();
+		return net ? income - burden : burden;
+	}
+
+	private static double agiAt(Filer filer, double income) {
+		filer.income = income;
+		synchronized (Filer.class) {
+			filer.load();
+			return TaxCalculator.agi();
+		}
+	}
+
+	/** Solves one input line, the way BatchWorker answers one filer line.
+	 * @return the incomes found, "none", or "ERROR message" if the line cannot be read.
+	 */
+	static String solveLine(String line, boolean net) {
+		try {
+			int comma = line.lastIndexOf(',');
+			if (comma < 0) {
+				throw new IllegalArgumentException("Expected a filer line followed by a target: " + line);
+			}
+			Filer filer = Filer.parse(line.substring(0, comma));
+			double target;
+			try {
+				target = Double.parseDouble(line.substring(comma + 1).trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad target in line: " + line, e);
+			}
+
+			List<Double> incomes = net ? incomeForNet(filer, target) : incomeForBurden(filer, target);
+			if (incomes.isEmpty()) {
+				return "none";
+			}
+			StringBuilder answer = new StringBuilder();
+			for (double income : incomes) {
+				if (answer.length() > 0) {
+					answer.append(' ');
+				}
+				answer.append(String.format(Locale.ROOT, "%.2f", income));
+			}
+			return answer.toString();
+		} catch (RuntimeException e) {
+			return "ERROR " + e.getMessage();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2 || !(args[0].equals("net") || args[0].equals("burden"))) {
+			System.err.println("Usage: java taxCalculator.GrossUpSolver net|burden input");
+			System.exit(2);
+		}
+		boolean net = args[0].equals("net");
+
+		PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false, "UTF-8");
+		for (String line : BatchCoordinator.readLines(args[1])) {
+			out.println(solveLine(line, net));
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,93 @@
+package taxCalculator;
+
+import java.io.*;
+
+/** Running totals for one group of filers in a distributional report: how many filers there
+ * are, their total burden and income, a sketch of their effective tax rates, and how many of
+ * them claimed each credit and for how much. Everything is kept in primitive counters, so a
+ * group takes the same memory whether it holds ten filers or ten million.
+ */
+public class GroupStats {
+	long filers;
+	double totalBurden;
+	double totalIncome;
+	RateSketch rates = new RateSketch();
+
+	long eitcClaims;
+	double eitcTotal;
+	long childCreditClaims;
+	double childCreditTotal;
+	long aotcClaims;
+	double aotcTotal;
+
+	/** Adds one filer's result. Filers with no income have no effective rate, so they count
+	 * toward every total except the rate percentiles.
+	 */
+	public void add(double income, TaxResult result) {
+		filers++;
+		totalBurden += result.burden;
+		totalIncome += income;
+		if (income > 0) {
+			rates.add(result.burden / income);
+		}
+		if (result.eitc > 0) {
+			eitcClaims++;
+			eitcTotal += result.eitc;
+		}
+		if (result.childCredit > 0) {
+			childCreditClaims++;
+			childCreditTotal += result.childCredit;
+		}
+		if (result.aotc > 0) {
+			aotcClaims++;
+			aotcTotal += result.aotc;
+		}
+	}
+
+	public void merge(GroupStats other) {
+		filers += other.filers;
+		totalBurden += other.totalBurden;
+		totalIncome += other.totalIncome;
+		rates.merge(other.rates);
+		eitcClaims += other.eitcClaims;
+		eitcTotal += other.eitcTotal;
+		childCreditClaims += other.childCreditClaims;
+		childCreditTotal += other.childCreditTotal;
+		aotcClaims += other.aotcClaims;
+		aotcTotal += other.aotcTotal;
+	}
+
+	/** Saves the group for a checkpoint. **/
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(filers);
+		out.writeDouble(totalBurden);
+		out.writeDouble(totalIncome);
+		rates.write(out);
+		out.writeLong(eitcClaims);
+		out.writeDouble(eitcTotal);
+		out.writeLong(childCreditClaims);
+		out.writeDouble(childCreditTotal);
+		out.writeLong(aotcClaims);
+		out.writeDouble(aotcTotal);
+	}
+
+	public static GroupStats read(DataInput in) throws IOException {
+		GroupStats stats = new GroupStats();
+		stats.filers = in.readLong();
+		stats.totalBurden = in.readDouble();
+		stats.totalIncome = in.readDouble();
+		stats.rates = RateSketch.read(in);
+		stats.eitcClaims = in.readLong();
+		stats.eitcTotal = in.readDouble();
+		stats.childCreditClaims = in.readLong();
+		stats.childCreditTotal = in.readDouble();
+		stats.aotcClaims = in.readLong();
+		stats.aotcTotal = in.readDouble();
+		return stats;
+	}
+
+	/** @return the average tax burden of the group, or 0 if it is empty. **/
+	public double meanBurden() {
+		return filers == 0 ? 0 : totalBurden / filers;
+	}
+}
@@ -0,0 +1,128 @@
+package taxCalculator;
+
+import java.io.*;
+import java.util.Locale;
+
+/** A fixed size histogram of effective tax rates, used to estimate rate percentiles without
+ * keeping every filer's rate. Credits can push a low earner's rate far below -100%, so bins
+ * grow geometrically away from zero on both sides: each bin is 2% wider than the one nearer
+ * zero, which keeps every estimate within about 1% of the true rate from 0.01% up to
+ * 1,000,000% in either direction. Rates closer to zero than that share one bin, and rates
+ * beyond it are counted in an end bin and reported as out of range rather than as a number.
+ * Two sketches can be merged by adding their bins, so partial sketches combine exactly.
+ */
+public class RateSketch {
+	static final double MIN_MAGNITUDE = 1e-4;
+	static final double MAX_MAGNITUDE = 1e4;
+	static final double GROWTH = 1.02;
+	/** Bins on each side of zero. **/
+	static final int SIDE = (int) Math.ceil(Math.log(MAX_MAGNITUDE / MIN_MAGNITUDE) / Math.log(GROWTH));
+	/** Below the range, SIDE negative bins, zero, SIDE positive bins, and above the range. **/
+	static final int BINS = 2 * SIDE + 3;
+	static final int ZERO = SIDE + 1;
+
+	final long[] bins = new long[BINS];
+	long count;
+
+	public void add(double rate) {
+		bins[bin(rate)]++;
+		count++;
+	}
+
+	static int bin(double rate) {
+		double magnitude = Math.abs(rate);
+		if (magnitude < MIN_MAGNITUDE) {
+			return ZERO;
+		}
+		if (magnitude > MAX_MAGNITUDE) {
+			return rate < 0 ? 0 : BINS - 1;
+		}
+		int step = (int) Math.ceil(Math.log(magnitude / MIN_MAGNITUDE) / Math.log(GROWTH)) - 1;
+		step = Math.max(0, Math.min(SIDE - 1, step));
+		return rate < 0 ? ZERO - 1 - step : ZERO + 1 + step;
+	}
+
+	/** @return the geometric middle of a bin, or an infinity for the bins outside the range. **/
+	static double middle(int bin) {
+		if (bin == 0) {
+			return Double.NEGATIVE_INFINITY;
+		} else if (bin == BINS - 1) {
+			return Double.POSITIVE_INFINITY;
+		} else if (bin == ZERO) {
+			return 0;
+		}
+		int step = bin < ZERO ? ZERO - 1 - bin : bin - ZERO - 1;
+		double magnitude = MIN_MAGNITUDE * Math.pow(GROWTH, step + .5);
+		return bin < ZERO ? -magnitude : magnitude;
+	}
+
+	public void merge(RateSketch other) {
+		for (int i = 0; i < BINS; i++) {
+			bins[i] += other.bins[i];
+		}
+		count += other.count;
+	}
+
+	/** Estimates a percentile of the rates seen so far, to within one bin.
+	 * @param fraction the percentile wanted, between 0 and 1. For the median, use .5.
+	 * @return the middle of the bin holding that percentile, negative or positive infinity if it
+	 * is beyond the range of the sketch, or NaN if no rates have been added.
+	 */
+	public double quantile(double fraction) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		long rank = Math.min(count - 1, (long) Math.floor(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < BINS; i++) {
+			seen += bins[i];
+			if (seen > rank) {
+				return middle(i);
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/** Writes a rate from quantile() as a percentage, or as "<" or ">" the range of the sketch. **/
+	static String percent(double rate) {
+		if (Double.isNaN(rate)) {
+			return "-";
+		} else if (rate == Double.NEGATIVE_INFINITY) {
+			return String.format(Locale.ROOT, "<-%.0f%%", 100 * MAX_MAGNITUDE);
+		} else if (rate == Double.POSITIVE_INFINITY) {
+			return String.format(Locale.ROOT, ">%.0f%%", 100 * MAX_MAGNITUDE);
+		}
+		return String.format(Locale.ROOT, "%.1f%%", 100 * rate);
+	}
+
+	/** Saves the sketch for a checkpoint. Most bins of a sketch are empty, so only the bins
+	 * that have been counted are written.
+	 */
+	public void write(DataOutput out) throws IOException {
+		int used = 0;
+		for (long bin : bins) {
+			if (bin != 0) {
+				used++;
+			}
+		}
+		out.writeLong(count);
+		out.writeInt(used);
+		for (int i = 0; i < BINS; i++) {
+			if (bins[i] != 0) {
+				out.writeShort(i);
+				out.writeLong(bins[i]);
+			}
+		}
+	}
+
+	public static RateSketch read(DataInput in) throws IOException {
+		RateSketch sketch = new RateSketch();
+		sketch.count = in.readLong();
+		int used = in.readInt();
+		for (int i = 0; i < used; i++) {
+			int bin = in.readShort();
+			sketch.bins[bin] = in.readLong();
+		}
+		return sketch;
+	}
+}
@@ -11,6 +11,10 @@ import java.util.*;
 public class StateIncomeTax {
 	private static Map<String, Double> stateTaxRates = new HashMap<>();
 	
+	static {
+		setMap();
+	}
+	
 	/** Creates the hash map described above**/
 	public static void setMap() {
 		stateTaxRates.put("Alaska", .0564);
@@ -18,7 +22,7 @@ public class StateIncomeTax {
 		stateTaxRates.put("Montana", .0689);
 		stateTaxRates.put("Wyoming", .0743);
 		stateTaxRates.put("Nevada", .0766);
-		stateTaxRates.put("Tenenssee", .0797);
+		stateTaxRates.put("Tennessee", .0797);
 		stateTaxRates.put("Idaho", .0848);
 		stateTaxRates.put("California", .0879);
 		stateTaxRates.put("South Carolina", .0884);
@@ -72,8 +76,12 @@ public class StateIncomeTax {
 	 * @return the magnitude of the state deduction for a given filer. 
 	 */
 	public static double stateTaxDeduction(String state, double income) {
-		setMap();
 		return income * stateTaxRates.get(state);
 	}
+	
+	/** @return whether the hash map has a tax rate for the given state. "" means no state. **/
+	public static boolean knownState(String state) {
+		return stateTaxRates.containsKey(state);
+	}
 
 }
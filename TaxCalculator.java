@@ -22,6 +22,34 @@ package taxCalculator;
  *
  */
 public class TaxCalculator {	
+	/** Medical expenses are only deductible above this share of income minus the other deductions. **/
+	static final double MEDICAL_FLOOR = .075;
+	
+	/** The personal exemption per person in the family, and the agi above which married couples
+	 * and individuals lose it. **/
+	static final double EXEMPTION_PER_PERSON = 4150;
+	static final double EXEMPTION_LIMIT_MARRIED = 462000;
+	static final double EXEMPTION_LIMIT_SINGLE = 380750;
+	
+	/** The earned income tax credit and its agi limits, by number of children up to three or more. **/
+	static final double[] EITC_AMOUNTS = {487, 3250, 5372, 6044};
+	static final double[] EITC_LIMITS_MARRIED = {20600, 45207, 50597, 53930};
+	static final double[] EITC_LIMITS_SINGLE = {15010, 39617, 45007, 48340};
+	
+	/** The agi limits of the child tax credit and the American Opportunity Tax Credit. **/
+	static final double CHILD_CREDIT_LIMIT_MARRIED = 110000;
+	static final double CHILD_CREDIT_LIMIT_SINGLE = 75000;
+	static final double AOTC_LIMIT_MARRIED = 180000;
+	static final double AOTC_LIMIT_SINGLE = 80000;
+	
+	/** The seven income tax brackets: where each starts in taxable income, the tax owed on the
+	 * income below it, and the rate on income inside it. **/
+	static final double[] MARRIED_BRACKETS = {0, 18650, 75900, 153100, 233350, 416700, 470000};
+	static final double[] MARRIED_BRACKET_TAX = {0, 1865, 10542.50, 29752.50, 52222.50, 112728, 131628};
+	static final double[] SINGLE_BRACKETS = {0, 9325, 37950, 91900, 191650, 416700, 418400};
+	static final double[] SINGLE_BRACKET_TAX = {0, 932.5, 5226.25, 18713.75, 46643.75, 120910.25, 121505.25};
+	static final double[] BRACKET_RATES = {.1, .15, .25, .28, .33, .35, .396};
+	
 	/**Taxpayers have the option of either accepting the standard deduction or itemizing
 	 * their deductions. The standard deduction begins at $13,000 for married couples and 
 	 * $6,500 for individuals. Additionally, people who are blind, people whose spouses are
@@ -79,7 +107,7 @@ public class TaxCalculator {
 	public static double itemizedDeductions() {
 		double firstThree = UserInterface.charitableGivings + UserInterface.mortgageValue + StateIncomeTax.stateTaxDeduction(UserInterface.state, UserInterface.income);
 		double adjustedIncome = UserInterface.income - firstThree;
-		double medicalExpenseDeduction = Math.max(UserInterface.medicalExpenses - (adjustedIncome * .075), 0);
+		double medicalExpenseDeduction = Math.max(UserInterface.medicalExpenses - (adjustedIncome * MEDICAL_FLOOR), 0);
 		return firstThree + medicalExpenseDeduction;
 		}
 	
@@ -89,10 +117,12 @@ public class TaxCalculator {
 	 * @return  A filer's adjusted gross income. 
 	 */
 	public static double agi() {
-		if (itemizedDeductions() > standardDeduction()) {
-			return Math.max(UserInterface.income - itemizedDeductions(), 0);
+		double itemized = itemizedDeductions();
+		double standard = standardDeduction();
+		if (itemized > standard) {
+			return Math.max(UserInterface.income - itemized, 0);
 		} else {
-			return Math.max(UserInterface.income - standardDeduction(), 0);
+			return Math.max(UserInterface.income - standard, 0);
 		} 
 	}
 	
@@ -103,12 +133,17 @@ public class TaxCalculator {
 	 * @return the size of an individual's personal exemption. 
 	 */
 	public static double personalExemption() {
-		if (agi() > 462000 || (agi() > 380750 && !UserInterface.married)) {
+		return personalExemption(agi());
+	}
+	
+	/** The personal exemption for a filer whose agi has already been calculated. **/
+	static double personalExemption(double agi) {
+		if (agi > EXEMPTION_LIMIT_MARRIED || (agi > EXEMPTION_LIMIT_SINGLE && !UserInterface.married)) {
 			return 0;
 		} else if (UserInterface.married) {
-			return (2 + UserInterface.children + UserInterface.childrenInCollege) * 4150;
+			return (2 + UserInterface.children + UserInterface.childrenInCollege) * EXEMPTION_PER_PERSON;
 		} else {
-			return (1 + UserInterface.children + UserInterface.childrenInCollege) * 4150;
+			return (1 + UserInterface.children + UserInterface.childrenInCollege) * EXEMPTION_PER_PERSON;
 		}
 	}
 	
@@ -122,60 +157,73 @@ public class TaxCalculator {
 	 * Their values are calculated below and summed up to determine a filer's total credits. 
 	 **/
 	public static double credits() {
-		double eitc;
-		double childCredit;
-		double aotc;
-		double agi = agi();
-		
+		return credits(agi());
+	}
+	
+	/** The total credits for a filer whose agi has already been calculated. **/
+	static double credits(double agi) {
+		return aotc(agi) + eitc(agi) + childCredit(agi);
+	}
+	
+	/** The earned income tax credit is a flat amount for employed citizens that depends on how many
+	 * children they have, and disappears entirely above an income limit that also depends on the
+	 * number of children. Filers with more than $3,450 in capital gains cannot claim it.
+	 * @return the size of a filer's earned income tax credit.
+	 */
+	public static double eitc() {
+		return eitc(agi());
+	}
+	
+	static double eitc(double agi) {
 		if (!UserInterface.employed || !UserInterface.americanCitizen || UserInterface.capitalGains > 3450) {
-			eitc = 0;
-		} else if (UserInterface.children + UserInterface.childrenInCollege == 0){
-			if (UserInterface.age > 65 || UserInterface.age < 25 || agi > 20600 ||(!UserInterface.married && agi > 15010)) {
-				eitc = 0;
-			} else {
-				eitc = 487;
-			} 
-		} else if (UserInterface.children + UserInterface.childrenInCollege == 1) {
-				if (agi > 45207 || (!UserInterface.married && agi > 39617)) {
-					eitc = 0;
-				} else {
-					eitc = 3250;
-				} 
-		} else if (UserInterface.children + UserInterface.childrenInCollege == 2) {
-			if (agi > 50597 || (!UserInterface.married && agi > 45007)) {
-				eitc = 0;
-				} else {
-					eitc = 5372;
-			}
+			return 0;
+		}
+		int children = UserInterface.children + UserInterface.childrenInCollege;
+		if (children < 0 || children > 3) {
+			// As before, any count other than 0, 1 or 2 gets the credit for three or more.
+			children = 3;
+		}
+		if (children == 0 && (UserInterface.age > 65 || UserInterface.age < 25)) {
+			return 0;
+		} else if (agi > EITC_LIMITS_MARRIED[children] || (!UserInterface.married && agi > EITC_LIMITS_SINGLE[children])) {
+			return 0;
 		} else {
-			if (agi > 53930 || (!UserInterface.married && agi > 48340)) {
-				eitc = 0;
-			} else {
-				eitc = 6044;
-			}
+			return EITC_AMOUNTS[children];
 		}
-		
-		
-		
-		if (agi < 110000 && UserInterface.married) {
-			childCredit = UserInterface.children * 1000;
-		} else if (agi < 75000 && !UserInterface.married) {
-			childCredit = UserInterface.children * 1000;
+	}
+	
+	/** The child tax credit is $1,000 for each child not in college, for married couples earning
+	 * less than $110,000 and individuals earning less than $75,000.
+	 * @return the size of a filer's child tax credit.
+	 */
+	public static double childCredit() {
+		return childCredit(agi());
+	}
+	
+	static double childCredit(double agi) {
+		if (agi < CHILD_CREDIT_LIMIT_MARRIED && UserInterface.married) {
+			return UserInterface.children * 1000;
+		} else if (agi < CHILD_CREDIT_LIMIT_SINGLE && !UserInterface.married) {
+			return UserInterface.children * 1000;
 		} else {
-			childCredit = 0;
+			return 0;
 		}
-		
-		
-		
-		if ((!UserInterface.married && agi > 80000) || (UserInterface.married && agi > 180000)) {
-			aotc = 0;
+	}
+	
+	/** The American Opportunity Tax Credit is $2,500 for each child in college, for married couples
+	 * earning up to $180,000 and individuals earning up to $80,000.
+	 * @return the size of a filer's American Opportunity Tax Credit.
+	 */
+	public static double aotc() {
+		return aotc(agi());
+	}
+	
+	static double aotc(double agi) {
+		if ((!UserInterface.married && agi > AOTC_LIMIT_SINGLE) || (UserInterface.married && agi > AOTC_LIMIT_MARRIED)) {
+			return 0;
 		} else {
-			aotc = 2500 * UserInterface.childrenInCollege;
+			return 2500 * UserInterface.childrenInCollege;
 		}
-		
-		
-		return aotc + eitc + childCredit;
-		
 	}
 	
 	/** This method calculate a filer's total tax burden. It begins by calculating their taxable 
@@ -187,43 +235,22 @@ public class TaxCalculator {
 	 * @return A filer's total tax burden. If negative, the government owes money to the filer. 
 	 */
 	public static double taxBurdenCalculator() {
-		double taxableIncome = Math.max(agi() - personalExemption(), 0);
+		double agi = agi();
+		return taxBeforeCredits(agi) - credits(agi);
+	}
+	
+	/** The income and capital gains tax owed by a filer whose agi has already been calculated,
+	 * before any credits are subtracted.
+	 */
+	static double taxBeforeCredits(double agi) {
+		double taxableIncome = Math.max(agi - personalExemption(agi), 0);
 		double incomeTaxBurden;
 		double capitalGainsTaxBurden;
 		
 		if (UserInterface.married) {
-			if (taxableIncome > 470000) {
-				incomeTaxBurden = 131628 + (.396 * (taxableIncome - 470000)); 
-			} else if (taxableIncome > 416700) {
-				incomeTaxBurden = 112728 + (.35 * (taxableIncome - 416700));
-			} else if (taxableIncome > 233350) {
-				incomeTaxBurden = 52222.50 + (.33 * (taxableIncome - 233350)); 
-			} else if (taxableIncome > 153100) {
-				incomeTaxBurden = 29752.50 + (.28 * (taxableIncome - 153100)); 
-			} else if (taxableIncome > 75900) {
-				incomeTaxBurden = 10542.50 + (.25 * (taxableIncome - 75900));
-			} else if (taxableIncome > 18650) {
-				incomeTaxBurden = 1865 + (.15 * (taxableIncome - 18650));
-			} else {
-				incomeTaxBurden = .1 * taxableIncome;
-			}
-				
+			incomeTaxBurden = bracketTax(taxableIncome, MARRIED_BRACKETS, MARRIED_BRACKET_TAX);
 		} else {
-			if (taxableIncome > 418400) {
-				incomeTaxBurden = 121505.25 + (.396 * (taxableIncome - 418400));
-			} else if (taxableIncome > 416700) {
-				incomeTaxBurden = 120910.25 + (.35 * (taxableIncome - 416700));
-			} else if (taxableIncome > 191650) {
-				incomeTaxBurden = 46643.75 + (.33 * (taxableIncome - 191650));
-			} else if (taxableIncome > 91900) {
-				incomeTaxBurden = 18713.75 + (.28 * (taxableIncome - 91900));
-			} else if (taxableIncome > 37950) {
-				incomeTaxBurden = 5226.25 + (.25 * (taxableIncome - 37950));
-			} else if (taxableIncome > 9325) {
-				incomeTaxBurden = 932.5 + (.15 * (taxableIncome - 9325));
-			} else {
-				incomeTaxBurden = taxableIncome * .1;
-			}
+			incomeTaxBurden = bracketTax(taxableIncome, SINGLE_BRACKETS, SINGLE_BRACKET_TAX);
 		}
 		
 		if (UserInterface.married) {
@@ -246,10 +273,21 @@ public class TaxCalculator {
 				}
 			}
 		
-		return incomeTaxBurden + capitalGainsTaxBurden - credits();
+		return incomeTaxBurden + capitalGainsTaxBurden;
 		
 	}
 	
+	/** The income tax on a taxable income: the tax owed below its bracket plus the bracket's rate
+	 * on the rest. **/
+	private static double bracketTax(double taxableIncome, double[] brackets, double[] bracketTax) {
+		for (int i = brackets.length - 1; i > 0; i--) {
+			if (taxableIncome > brackets[i]) {
+				return bracketTax[i] + (BRACKET_RATES[i] * (taxableIncome - brackets[i]));
+			}
+		}
+		return BRACKET_RATES[0] * taxableIncome;
+	}
+	
 
 	
 	
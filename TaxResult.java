@@ -0,0 +1,42 @@
+package taxCalculator;
+
+import java.util.Locale;
+
+/** The outcome of running one filer through the calculator: their total tax burden, and how
+ * much of each tax credit they received. In batch output a result is written as one comma
+ * separated line, burden first, then the earned income, child and American Opportunity credits.
+ */
+public class TaxResult {
+	final double burden;
+	final double eitc;
+	final double childCredit;
+	final double aotc;
+
+	public TaxResult(double burden, double eitc, double childCredit, double aotc) {
+		this.burden = burden;
+		this.eitc = eitc;
+		this.childCredit = childCredit;
+		this.aotc = aotc;
+	}
+
+	/** Reads a result back from the line written by toString().
+	 * @throws IllegalArgumentException if the line is not a result line.
+	 */
+	public static TaxResult parse(String line) {
+		String[] parts = line.split(",");
+		if (parts.length != 4) {
+			throw new IllegalArgumentException("Not a result line: " + line);
+		}
+		try {
+			return new TaxResult(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+					Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a result line: " + line, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%.2f,%.2f,%.2f,%.2f", burden, eitc, childCredit, aotc);
+	}
+}